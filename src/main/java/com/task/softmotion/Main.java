@@ -44,6 +44,12 @@ public class Main {
             System.out.println("[6] DDLChange for table " + tableName + ":");
             System.out.println(processor.getDDLChange(tableName));
 
+            // Пример 7: Выгрузка данных из БД в YML, сжатый gzip
+            String exportPath = "export.xml.gz";
+            System.out.println("[7] Exporting to " + exportPath + "...");
+            processor.exportXml(exportPath);
+            System.out.println("[7] Data exported successfully");
+
             processor.close();
 
         } catch (SQLException e) {
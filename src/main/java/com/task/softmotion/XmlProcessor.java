@@ -5,21 +5,46 @@ import groovy.xml.slurpersupport.GPathResult;
 import groovy.xml.slurpersupport.NodeChild;
 import org.xml.sax.InputSource;
 
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
 import java.math.BigDecimal;
 import java.net.URL;
 import java.net.URLConnection;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.PosixFileAttributeView;
 import java.sql.*;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.UUID;
 import java.util.logging.Logger;
+import java.util.zip.GZIPOutputStream;
 
 public class XmlProcessor {
     private String xmlUrl = "https://expro.ru/bitrix/catalog_export/export_Sai.xml";
     private Connection connection;
     private GPathResult xmlData;
 
+    // Размер порции строк, которую курсор postgresql отдает за один запрос
+    private static final int EXPORT_FETCH_SIZE = 1000;
+    // Размер буферов записи файла выгрузки
+    private static final int EXPORT_BUFFER_SIZE = 64 * 1024;
+
     public XmlProcessor(Connection connection) {
         this.connection = connection;
     }
@@ -453,6 +478,262 @@ public class XmlProcessor {
         }
     }
 
+    /**
+     * Выгружает данные из бд в файл формата YML (shop/currencies/categories/offers/param)
+     * если имя файла оканчивается на .gz, файл сжимается gzip
+     * @param filePath путь к файлу
+     */
+    public void exportXml(String filePath) {
+        Path target = Paths.get(filePath).toAbsolutePath();
+        Path tempFile = null;
+
+        try {
+            // Пишем во временный файл рядом с целевым и подменяем его только после успешной выгрузки,
+            // чтобы при ошибке не оставить обрезанный файл вместо прежнего.
+            // Files.createTempFile создает файл с правами rw-------, поэтому файл создается обычным способом
+            // и получает права по umask, как и при прямой записи в целевой файл
+            tempFile = target.resolveSibling(target.getFileName() + "." + UUID.randomUUID() + ".tmp");
+            OutputStream tempOut = Files.newOutputStream(tempFile, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+
+            try (OutputStream fileOut = new BufferedOutputStream(tempOut, EXPORT_BUFFER_SIZE)) {
+                if (filePath.toLowerCase().endsWith(".gz")) {
+                    try (GZIPOutputStream gzipOut = new GZIPOutputStream(fileOut, EXPORT_BUFFER_SIZE)) {
+                        exportXml(gzipOut);
+                    }
+                } else {
+                    exportXml(fileOut);
+                }
+            }
+
+            // Заменяемый файл сохраняет свои права
+            if (Files.exists(target) && Files.getFileStore(target).supportsFileAttributeView(PosixFileAttributeView.class)) {
+                Files.setPosixFilePermissions(tempFile, Files.getPosixFilePermissions(target));
+            }
+
+            Files.move(tempFile, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            tempFile = null;
+        } catch (IOException e) {
+            throw new RuntimeException("Ошибка записи файла " + filePath + ": " + e.getMessage(), e);
+        } finally {
+            if (tempFile != null) {
+                try {
+                    Files.deleteIfExists(tempFile);
+                } catch (IOException e) {
+                    // игнорируем
+                }
+            }
+        }
+    }
+
+    /**
+     * Выгружает данные из бд в поток в формате YML
+     * таблицы читаются курсорами порциями, параметры товаров присоединяются
+     * слиянием по offer_id, поэтому расход памяти не зависит от размера каталога
+     * поток не закрывается
+     * @param out поток для записи
+     */
+    public void exportXml(OutputStream out) {
+        boolean autoCommit = true;
+        int isolation = Connection.TRANSACTION_READ_COMMITTED;
+        boolean readOnly = false;
+
+        try {
+            autoCommit = connection.getAutoCommit();
+            isolation = connection.getTransactionIsolation();
+            readOnly = connection.isReadOnly();
+
+            // Курсоры postgresql работают только внутри транзакции.
+            // Если транзакцию открывает этот метод, все запросы читают один снимок данных,
+            // иначе используется транзакция вызывающего кода как есть
+            if (autoCommit) {
+                connection.setTransactionIsolation(Connection.TRANSACTION_REPEATABLE_READ);
+                connection.setReadOnly(true);
+                connection.setAutoCommit(false);
+            }
+
+            // С OutputStream XMLStreamWriter кодирует UTF-8 побайтно, поэтому пишем в буферизованный Writer:
+            // кодирование идет блоками, и gzip получает данные крупными порциями
+            Writer bufferedOut = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), EXPORT_BUFFER_SIZE);
+            XMLStreamWriter writer = XMLOutputFactory.newInstance().createXMLStreamWriter(bufferedOut);
+            try {
+                writer.writeStartDocument("UTF-8", "1.0");
+                writer.writeStartElement("yml_catalog");
+                writer.writeAttribute("date",
+                        LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm")));
+                writer.writeStartElement("shop");
+
+                exportCurrencies(writer);
+                exportCategories(writer);
+                int offerCount = exportOffers(writer);
+
+                writer.writeEndElement();
+                writer.writeEndElement();
+                writer.writeEndDocument();
+                writer.flush();
+                bufferedOut.flush();
+
+                System.out.println("Выгружено товаров: " + offerCount);
+            } finally {
+                writer.close();
+            }
+
+            if (autoCommit) {
+                connection.commit();
+            }
+        } catch (SQLException | XMLStreamException | IOException e) {
+            if (autoCommit) {
+                try {
+                    connection.rollback();
+                } catch (SQLException ex) {
+                    throw new RuntimeException("Ошибка отката транзакции", ex);
+                }
+            }
+            throw new RuntimeException("Ошибка выгрузки XML: " + e.getMessage(), e);
+        } finally {
+            if (autoCommit) {
+                try {
+                    connection.setAutoCommit(true);
+                    connection.setReadOnly(readOnly);
+                    connection.setTransactionIsolation(isolation);
+                } catch (SQLException e) {
+                    // игнорируем
+                }
+            }
+        }
+    }
+
+    private void exportCurrencies(XMLStreamWriter writer) throws SQLException, XMLStreamException {
+        String sql = "SELECT id, rate FROM currency ORDER BY id";
+
+        try (PreparedStatement stmt = connection.prepareStatement(sql)) {
+            stmt.setFetchSize(EXPORT_FETCH_SIZE);
+
+            writer.writeStartElement("currencies");
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    writer.writeEmptyElement("currency");
+                    writer.writeAttribute("id", rs.getString("id"));
+                    writer.writeAttribute("rate", formatDecimal(rs.getBigDecimal("rate")));
+                }
+            }
+            writer.writeEndElement();
+        }
+    }
+
+    private void exportCategories(XMLStreamWriter writer) throws SQLException, XMLStreamException {
+        String sql = "SELECT id, name, parent_id FROM categories ORDER BY id";
+
+        try (PreparedStatement stmt = connection.prepareStatement(sql)) {
+            stmt.setFetchSize(EXPORT_FETCH_SIZE);
+
+            writer.writeStartElement("categories");
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    writer.writeStartElement("category");
+                    writer.writeAttribute("id", String.valueOf(rs.getInt("id")));
+
+                    int parentId = rs.getInt("parent_id");
+                    if (!rs.wasNull()) {
+                        writer.writeAttribute("parentId", String.valueOf(parentId));
+                    }
+
+                    writer.writeCharacters(rs.getString("name"));
+                    writer.writeEndElement();
+                }
+            }
+            writer.writeEndElement();
+        }
+    }
+
+    private int exportOffers(XMLStreamWriter writer) throws SQLException, XMLStreamException {
+        // Оба запроса отсортированы по id товара, чтобы параметры можно было
+        // присоединять слиянием без загрузки в память
+        String offersSQL = "SELECT id, available, url, price, currency_id, category_id, picture, " +
+                "    name, vendor, vendor_code, description, count " +
+                "FROM offers ORDER BY id";
+        String paramsSQL = "SELECT offer_id, param_name, param_value " +
+                "FROM offer_params ORDER BY offer_id, id";
+
+        try (PreparedStatement offerStmt = connection.prepareStatement(offersSQL);
+             PreparedStatement paramStmt = connection.prepareStatement(paramsSQL)) {
+            offerStmt.setFetchSize(EXPORT_FETCH_SIZE);
+            paramStmt.setFetchSize(EXPORT_FETCH_SIZE);
+
+            try (ResultSet offers = offerStmt.executeQuery();
+                 ResultSet params = paramStmt.executeQuery()) {
+                return writeOffers(writer, offers, params);
+            }
+        }
+    }
+
+    /**
+     * Записывает элемент offers, присоединяя параметры слиянием
+     * оба набора должны быть отсортированы по id товара
+     * @return количество записанных товаров
+     */
+    int writeOffers(XMLStreamWriter writer, ResultSet offers, ResultSet params) throws SQLException, XMLStreamException {
+        int offerCount = 0;
+
+        writer.writeStartElement("offers");
+
+        boolean hasParam = params.next();
+
+        while (offers.next()) {
+            int id = offers.getInt("id");
+
+            writer.writeStartElement("offer");
+            writer.writeAttribute("id", String.valueOf(id));
+            writer.writeAttribute("available", String.valueOf(offers.getBoolean("available")));
+
+            writeElementIfNotNull(writer, "url", offers.getString("url"));
+            writeElementIfNotNull(writer, "price", formatDecimal(offers.getBigDecimal("price")));
+            writeElementIfNotNull(writer, "currencyId", offers.getString("currency_id"));
+            writeElementIfNotNull(writer, "categoryId", offers.getString("category_id"));
+            writeElementIfNotNull(writer, "picture", offers.getString("picture"));
+            writeElementIfNotNull(writer, "name", offers.getString("name"));
+            writeElementIfNotNull(writer, "vendor", offers.getString("vendor"));
+            writeElementIfNotNull(writer, "vendorCode", offers.getString("vendor_code"));
+            writeElementIfNotNull(writer, "description", offers.getString("description"));
+            writeElementIfNotNull(writer, "count", offers.getString("count"));
+
+            // Пропускаем параметры товаров, которых нет в offers
+            while (hasParam && params.getInt("offer_id") < id) {
+                hasParam = params.next();
+            }
+
+            while (hasParam && params.getInt("offer_id") == id) {
+                writer.writeStartElement("param");
+                writer.writeAttribute("name", params.getString("param_name"));
+                String paramValue = params.getString("param_value");
+                if (paramValue != null) {
+                    writer.writeCharacters(paramValue);
+                }
+                writer.writeEndElement();
+                hasParam = params.next();
+            }
+
+            writer.writeEndElement();
+            offerCount++;
+        }
+
+        writer.writeEndElement();
+
+        return offerCount;
+    }
+
+    // NUMERIC возвращается с дополненной дробной частью (1500.00), в исходном фиде было 1500
+    private String formatDecimal(BigDecimal value) {
+        return value != null ? value.stripTrailingZeros().toPlainString() : null;
+    }
+
+    private void writeElementIfNotNull(XMLStreamWriter writer, String name, String value) throws XMLStreamException {
+        if (value != null && !value.isEmpty()) {
+            writer.writeStartElement(name);
+            writer.writeCharacters(value);
+            writer.writeEndElement();
+        }
+    }
+
     // Вспомогательные методы для обработки XML
     private String getChildText(NodeChild node, String childName) {
         try {
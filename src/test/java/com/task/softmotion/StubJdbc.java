@@ -0,0 +1,171 @@
+package com.task.softmotion;
+
+import java.lang.reflect.Proxy;
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Заглушки JDBC для тестов выгрузки без реальной бд
+ * строки задаются итератором, поэтому большие наборы можно генерировать на лету
+ */
+class StubJdbc {
+    private static final Pattern FROM_TABLE = Pattern.compile("FROM\\s+(\\w+)", Pattern.CASE_INSENSITIVE);
+
+    /**
+     * Создает строку из пар имя колонки / значение
+     */
+    static Map<String, Object> row(Object... columnsAndValues) {
+        Map<String, Object> row = new LinkedHashMap<>();
+        for (int i = 0; i < columnsAndValues.length; i += 2) {
+            row.put((String) columnsAndValues[i], columnsAndValues[i + 1]);
+        }
+        return row;
+    }
+
+    static ResultSet resultSet(List<Map<String, Object>> rows) {
+        return resultSet(rows.iterator());
+    }
+
+    @SuppressWarnings("unchecked")
+    static ResultSet resultSet(Iterator<Map<String, Object>> rows) {
+        Map<String, Object>[] current = new Map[1];
+        boolean[] wasNull = new boolean[1];
+
+        return (ResultSet) Proxy.newProxyInstance(StubJdbc.class.getClassLoader(), new Class<?>[]{ResultSet.class},
+                (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "next":
+                            current[0] = rows.hasNext() ? rows.next() : null;
+                            return current[0] != null;
+                        case "wasNull":
+                            return wasNull[0];
+                        case "close":
+                            return null;
+                        case "getString":
+                        case "getInt":
+                        case "getBoolean":
+                        case "getBigDecimal":
+                            Object value = current[0].get((String) args[0]);
+                            wasNull[0] = value == null;
+                            return convert(method.getName(), value);
+                        default:
+                            throw new UnsupportedOperationException("ResultSet." + method.getName());
+                    }
+                });
+    }
+
+    private static Object convert(String getter, Object value) {
+        switch (getter) {
+            case "getString":
+                return value != null ? value.toString() : null;
+            case "getInt":
+                return value != null ? ((Number) value).intValue() : 0;
+            case "getBoolean":
+                return value != null && (Boolean) value;
+            default:
+                return value != null ? new BigDecimal(value.toString()) : null;
+        }
+    }
+
+    /**
+     * Соединение, которое отдает строки таблицы по имени из FROM запроса
+     * и запоминает вызовы управления транзакцией
+     */
+    static class StubConnection {
+        final Map<String, Supplier<Iterator<Map<String, Object>>>> tables = new HashMap<>();
+        boolean autoCommit = true;
+        boolean readOnly = false;
+        int isolation = Connection.TRANSACTION_READ_COMMITTED;
+        int queryIsolation = -1;
+        boolean queryReadOnly;
+        int commits;
+        int rollbacks;
+        final Map<String, Integer> fetchSizes = new HashMap<>();
+
+        StubConnection table(String name, List<Map<String, Object>> rows) {
+            tables.put(name, rows::iterator);
+            return this;
+        }
+
+        StubConnection table(String name, Supplier<Iterator<Map<String, Object>>> rows) {
+            tables.put(name, rows);
+            return this;
+        }
+
+        Connection connection() {
+            return (Connection) Proxy.newProxyInstance(StubJdbc.class.getClassLoader(), new Class<?>[]{Connection.class},
+                    (proxy, method, args) -> {
+                        switch (method.getName()) {
+                            case "getAutoCommit":
+                                return autoCommit;
+                            case "setAutoCommit":
+                                autoCommit = (Boolean) args[0];
+                                return null;
+                            case "isReadOnly":
+                                return readOnly;
+                            case "setReadOnly":
+                                readOnly = (Boolean) args[0];
+                                return null;
+                            case "getTransactionIsolation":
+                                return isolation;
+                            case "setTransactionIsolation":
+                                isolation = (Integer) args[0];
+                                return null;
+                            case "commit":
+                                commits++;
+                                return null;
+                            case "rollback":
+                                rollbacks++;
+                                return null;
+                            case "close":
+                                return null;
+                            case "prepareStatement":
+                                return statement((String) args[0]);
+                            default:
+                                throw new UnsupportedOperationException("Connection." + method.getName());
+                        }
+                    });
+        }
+
+        private PreparedStatement statement(String sql) {
+            Matcher matcher = FROM_TABLE.matcher(sql);
+            if (!matcher.find()) {
+                throw new IllegalArgumentException("Не найдена таблица в запросе: " + sql);
+            }
+            String tableName = matcher.group(1);
+
+            return (PreparedStatement) Proxy.newProxyInstance(StubJdbc.class.getClassLoader(),
+                    new Class<?>[]{PreparedStatement.class},
+                    (proxy, method, args) -> {
+                        switch (method.getName()) {
+                            case "setFetchSize":
+                                fetchSizes.put(tableName, (Integer) args[0]);
+                                return null;
+                            case "executeQuery":
+                                queryIsolation = isolation;
+                                queryReadOnly = readOnly;
+                                Supplier<Iterator<Map<String, Object>>> rows = tables.get(tableName);
+                                if (rows == null) {
+                                    throw new SQLException("relation \"" + tableName + "\" does not exist");
+                                }
+                                return resultSet(rows.get());
+                            case "close":
+                                return null;
+                            default:
+                                throw new UnsupportedOperationException("PreparedStatement." + method.getName());
+                        }
+                    });
+        }
+    }
+}
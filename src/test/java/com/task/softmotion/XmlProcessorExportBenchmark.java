@@ -0,0 +1,172 @@
+package com.task.softmotion;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.function.IntFunction;
+import java.util.function.Supplier;
+import java.util.zip.GZIPOutputStream;
+
+import static com.task.softmotion.StubJdbc.row;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Замер пропускной способности выгрузки на сгенерированном каталоге
+ * запуск: ./gradlew benchmark
+ */
+@Tag("benchmark")
+class XmlProcessorExportBenchmark {
+    private static final int OFFERS = 500_000;
+    private static final int PARAMS_PER_OFFER = 5;
+    private static final int WARMUP_RUNS = 2;
+    private static final int MEASURED_RUNS = 3;
+
+    // Строки генерируются на лету, поэтому память занимает только выгрузка
+    private static Iterator<Map<String, Object>> rows(int count, IntFunction<Map<String, Object>> generator) {
+        return new Iterator<>() {
+            private int index;
+
+            @Override
+            public boolean hasNext() {
+                return index < count;
+            }
+
+            @Override
+            public Map<String, Object> next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return generator.apply(index++);
+            }
+        };
+    }
+
+    private StubJdbc.StubConnection catalog(int offers) {
+        return new StubJdbc.StubConnection()
+                .table("currency", List.of(row("id", "RUB", "rate", "1.0000")))
+                .table("categories", List.of(row("id", 1, "name", "Каталог", "parent_id", null)))
+                .table("offers", () -> rows(offers, i -> row(
+                        "id", i, "available", i % 3 != 0, "url", "https://example.com/product/" + i,
+                        "price", (i % 10_000) + ".90", "currency_id", "RUB", "category_id", 1,
+                        "picture", "https://example.com/img/" + i + ".jpg", "name", "Товар номер " + i,
+                        "vendor", "Vendor " + (i % 100), "vendor_code", "VC-" + i,
+                        "description", "Описание товара номер " + i + " с <разметкой> & спецсимволами",
+                        "count", i % 50)))
+                .table("offer_params", () -> rows(offers * PARAMS_PER_OFFER, i -> row(
+                        "offer_id", i / PARAMS_PER_OFFER, "param_name", "Параметр " + (i % PARAMS_PER_OFFER),
+                        "param_value", "Значение " + i)));
+    }
+
+    @Test
+    void exportThroughput() throws Exception {
+        XmlProcessor processor = new XmlProcessor(catalog(OFFERS).connection());
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+
+        for (int i = 0; i < WARMUP_RUNS; i++) {
+            processor.exportXml(OutputStream.nullOutputStream());
+        }
+
+        for (String mode : new String[]{"xml", "gzip"}) {
+            for (int i = 0; i < MEASURED_RUNS; i++) {
+                System.gc();
+                long heapBefore = memory.getHeapMemoryUsage().getUsed();
+                CountingOutputStream out = new CountingOutputStream();
+
+                long start = System.nanoTime();
+                if (mode.equals("gzip")) {
+                    try (GZIPOutputStream gzipOut = new GZIPOutputStream(out, 64 * 1024)) {
+                        processor.exportXml(gzipOut);
+                    }
+                } else {
+                    processor.exportXml(out);
+                }
+                long elapsedNanos = System.nanoTime() - start;
+                long heapAfter = memory.getHeapMemoryUsage().getUsed();
+
+                double seconds = elapsedNanos / 1_000_000_000.0;
+                System.out.printf("[%s #%d] %d offers in %.2f s: %.0f offers/s, %.1f MB/s, heap %d MB -> %d MB%n",
+                        mode, i + 1, OFFERS, seconds, OFFERS / seconds, out.count / seconds / (1024 * 1024),
+                        heapBefore / (1024 * 1024), heapAfter / (1024 * 1024));
+
+                assertTrue(out.count > 0);
+            }
+        }
+    }
+
+    @Test
+    void exportMemoryDoesNotGrowWithCatalogSize() {
+        long smallHeap = retainedHeapDuringExport(OFFERS / 10);
+        long largeHeap = retainedHeapDuringExport(OFFERS);
+
+        System.out.printf("retained heap: %d offers -> %d KB, %d offers -> %d KB%n",
+                OFFERS / 10, smallHeap / 1024, OFFERS, largeHeap / 1024);
+
+        // Каталог в 10 раз больше не должен занимать заметно больше памяти
+        assertTrue(largeHeap < smallHeap + 16L * 1024 * 1024,
+                "retained heap grew from " + smallHeap + " to " + largeHeap + " bytes");
+    }
+
+    /**
+     * Максимальный объем живых объектов, измеренный после сборки мусора
+     * в нескольких точках по ходу выгрузки товаров
+     */
+    private long retainedHeapDuringExport(int offers) {
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        System.gc();
+        long heapBefore = memory.getHeapMemoryUsage().getUsed();
+
+        long[] peak = new long[1];
+        int checkpoint = offers / 5;
+        StubJdbc.StubConnection stub = catalog(offers);
+        Supplier<Iterator<Map<String, Object>>> offerRows = stub.tables.get("offers");
+        stub.table("offers", () -> {
+            Iterator<Map<String, Object>> source = offerRows.get();
+            return new Iterator<>() {
+                private int index;
+
+                @Override
+                public boolean hasNext() {
+                    return source.hasNext();
+                }
+
+                @Override
+                public Map<String, Object> next() {
+                    if (++index % checkpoint == 0) {
+                        System.gc();
+                        peak[0] = Math.max(peak[0], memory.getHeapMemoryUsage().getUsed() - heapBefore);
+                    }
+                    return source.next();
+                }
+            };
+        });
+
+        CountingOutputStream out = new CountingOutputStream();
+        new XmlProcessor(stub.connection()).exportXml(out);
+        assertTrue(out.count > 0);
+        assertEquals(0, stub.rollbacks);
+
+        return Math.max(peak[0], 0);
+    }
+
+    private static class CountingOutputStream extends OutputStream {
+        long count;
+
+        @Override
+        public void write(int b) {
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            count += len;
+        }
+    }
+}
@@ -0,0 +1,335 @@
+package com.task.softmotion;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamWriter;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.sql.Connection;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.GZIPInputStream;
+
+import static com.task.softmotion.StubJdbc.row;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+class XmlProcessorExportTest {
+
+    private StubJdbc.StubConnection catalog() {
+        return new StubJdbc.StubConnection()
+                .table("currency", List.of(
+                        row("id", "RUB", "rate", "1.0000"),
+                        row("id", "USD", "rate", "92.5000")))
+                .table("categories", List.of(
+                        row("id", 1, "name", "Инструмент", "parent_id", null),
+                        row("id", 2, "name", "Дрели & шуруповерты", "parent_id", 1)))
+                .table("offers", List.of(
+                        offer(10, "1500.00"),
+                        offer(20, "99.90"),
+                        offer(30, null)))
+                .table("offer_params", List.of(
+                        // параметр удаленного товара перед первым товаром
+                        row("offer_id", 5, "param_name", "Цвет", "param_value", "синий"),
+                        row("offer_id", 10, "param_name", "Вес", "param_value", "2 кг"),
+                        row("offer_id", 10, "param_name", "Цвет", "param_value", "красный"),
+                        // параметр удаленного товара между товарами, у товара 20 параметров нет
+                        row("offer_id", 25, "param_name", "Цвет", "param_value", "зеленый"),
+                        row("offer_id", 30, "param_name", "Гарантия", "param_value", null),
+                        // параметр удаленного товара после последнего товара
+                        row("offer_id", 40, "param_name", "Цвет", "param_value", "черный")));
+    }
+
+    private Map<String, Object> offer(int id, String price) {
+        return row("id", id, "available", id != 20, "url", "https://example.com/" + id, "price", price,
+                "currency_id", "RUB", "category_id", 2, "picture", null, "name", "Товар " + id,
+                "vendor", "Bosch", "vendor_code", "VC-" + id, "description", "", "count", id);
+    }
+
+    private Document export(StubJdbc.StubConnection stub) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new XmlProcessor(stub.connection()).exportXml(out);
+        return parse(new ByteArrayInputStream(out.toByteArray()));
+    }
+
+    private Document parse(InputStream in) throws Exception {
+        return DocumentBuilderFactory.newInstance().newDocumentBuilder().parse(in);
+    }
+
+    private List<Element> elements(Element parent, String name) {
+        NodeList nodes = parent.getElementsByTagName(name);
+        List<Element> result = new ArrayList<>();
+        for (int i = 0; i < nodes.getLength(); i++) {
+            result.add((Element) nodes.item(i));
+        }
+        return result;
+    }
+
+    private String childText(Element parent, String name) {
+        List<Element> children = elements(parent, name);
+        return children.isEmpty() ? null : children.get(0).getTextContent();
+    }
+
+    @Test
+    void exportWritesShopStructure() throws Exception {
+        Element root = export(catalog()).getDocumentElement();
+
+        assertEquals("yml_catalog", root.getTagName());
+        assertFalse(root.getAttribute("date").isEmpty());
+
+        Element shop = elements(root, "shop").get(0);
+        List<Element> currencies = elements(shop, "currency");
+        assertEquals(2, currencies.size());
+        assertEquals("RUB", currencies.get(0).getAttribute("id"));
+        assertEquals("1", currencies.get(0).getAttribute("rate"));
+        assertEquals("92.5", currencies.get(1).getAttribute("rate"));
+
+        List<Element> categories = elements(shop, "category");
+        assertEquals(2, categories.size());
+        assertFalse(categories.get(0).hasAttribute("parentId"));
+        assertEquals("1", categories.get(1).getAttribute("parentId"));
+        assertEquals("Дрели & шуруповерты", categories.get(1).getTextContent());
+
+        assertEquals(3, elements(shop, "offer").size());
+    }
+
+    @Test
+    void exportWritesOfferFields() throws Exception {
+        List<Element> offers = elements(export(catalog()).getDocumentElement(), "offer");
+        Element first = offers.get(0);
+
+        assertEquals("10", first.getAttribute("id"));
+        assertEquals("true", first.getAttribute("available"));
+        assertEquals("false", offers.get(1).getAttribute("available"));
+        assertEquals("https://example.com/10", childText(first, "url"));
+        assertEquals("1500", childText(first, "price"));
+        assertEquals("99.9", childText(offers.get(1), "price"));
+        assertNull(childText(offers.get(2), "price"));
+        assertEquals("RUB", childText(first, "currencyId"));
+        assertEquals("2", childText(first, "categoryId"));
+        assertEquals("Товар 10", childText(first, "name"));
+        assertEquals("VC-10", childText(first, "vendorCode"));
+        assertEquals("10", childText(first, "count"));
+        // пустые и null значения не выгружаются
+        assertNull(childText(first, "picture"));
+        assertNull(childText(first, "description"));
+    }
+
+    @Test
+    void exportMergesParamsByOfferId() throws Exception {
+        List<Element> offers = elements(export(catalog()).getDocumentElement(), "offer");
+
+        List<Element> firstParams = elements(offers.get(0), "param");
+        assertEquals(2, firstParams.size());
+        assertEquals("Вес", firstParams.get(0).getAttribute("name"));
+        assertEquals("2 кг", firstParams.get(0).getTextContent());
+        assertEquals("красный", firstParams.get(1).getTextContent());
+
+        assertTrue(elements(offers.get(1), "param").isEmpty());
+
+        List<Element> lastParams = elements(offers.get(2), "param");
+        assertEquals(1, lastParams.size());
+        assertEquals("Гарантия", lastParams.get(0).getAttribute("name"));
+        assertEquals("", lastParams.get(0).getTextContent());
+    }
+
+    private Element writeOffers(List<Map<String, Object>> offers, List<Map<String, Object>> params,
+                                int expectedCount) throws Exception {
+        StringWriter out = new StringWriter();
+        XMLStreamWriter writer = XMLOutputFactory.newInstance().createXMLStreamWriter(out);
+
+        int count = new XmlProcessor(null).writeOffers(writer, StubJdbc.resultSet(offers), StubJdbc.resultSet(params));
+        writer.close();
+
+        assertEquals(expectedCount, count);
+        return parse(new ByteArrayInputStream(out.toString().getBytes(StandardCharsets.UTF_8))).getDocumentElement();
+    }
+
+    private Map<String, Object> param(int offerId, String value) {
+        return row("offer_id", offerId, "param_name", "p", "param_value", value);
+    }
+
+    private List<String> paramValues(Element offer) {
+        List<String> values = new ArrayList<>();
+        for (Element param : elements(offer, "param")) {
+            values.add(param.getTextContent());
+        }
+        return values;
+    }
+
+    @Test
+    void writeOffersJoinsParamsOfAdjacentOffers() throws Exception {
+        Element root = writeOffers(
+                List.of(offer(1, null), offer(2, null), offer(3, null)),
+                List.of(param(1, "a"), param(2, "b"), param(2, "c"), param(3, "d")),
+                3);
+
+        List<Element> offers = elements(root, "offer");
+        assertEquals(List.of("a"), paramValues(offers.get(0)));
+        assertEquals(List.of("b", "c"), paramValues(offers.get(1)));
+        assertEquals(List.of("d"), paramValues(offers.get(2)));
+    }
+
+    @Test
+    void writeOffersSkipsParamsOfMissingOffers() throws Exception {
+        Element root = writeOffers(
+                List.of(offer(10, null), offer(20, null)),
+                List.of(param(1, "x"), param(2, "x"), param(15, "x"), param(16, "x"), param(20, "b"), param(99, "x")),
+                2);
+
+        List<Element> offers = elements(root, "offer");
+        assertTrue(paramValues(offers.get(0)).isEmpty());
+        assertEquals(List.of("b"), paramValues(offers.get(1)));
+    }
+
+    @Test
+    void writeOffersWithoutOffersIgnoresParams() throws Exception {
+        Element root = writeOffers(List.of(), List.of(param(1, "x"), param(2, "x")), 0);
+
+        assertEquals("offers", root.getTagName());
+        assertTrue(elements(root, "offer").isEmpty());
+    }
+
+    @Test
+    void exportWithoutParamsWritesAllOffers() throws Exception {
+        StubJdbc.StubConnection stub = catalog().table("offer_params", List.of());
+
+        List<Element> offers = elements(export(stub).getDocumentElement(), "offer");
+
+        assertEquals(3, offers.size());
+        for (Element offer : offers) {
+            assertTrue(elements(offer, "param").isEmpty());
+        }
+    }
+
+    @Test
+    void exportReadsOneReadOnlySnapshot() throws Exception {
+        StubJdbc.StubConnection stub = catalog();
+
+        export(stub);
+
+        assertEquals(Connection.TRANSACTION_REPEATABLE_READ, stub.queryIsolation);
+        assertTrue(stub.queryReadOnly);
+        // каждая таблица читается курсором
+        for (String table : List.of("currency", "categories", "offers", "offer_params")) {
+            assertTrue(stub.fetchSizes.getOrDefault(table, 0) > 0, "no fetch size for " + table);
+        }
+        assertEquals(1, stub.commits);
+        assertEquals(0, stub.rollbacks);
+        // настройки соединения восстановлены
+        assertTrue(stub.autoCommit);
+        assertFalse(stub.readOnly);
+        assertEquals(Connection.TRANSACTION_READ_COMMITTED, stub.isolation);
+    }
+
+    @Test
+    void exportKeepsCallerTransaction() throws Exception {
+        StubJdbc.StubConnection stub = catalog();
+        stub.autoCommit = false;
+
+        export(stub);
+
+        assertEquals(0, stub.commits);
+        assertEquals(0, stub.rollbacks);
+        assertFalse(stub.autoCommit);
+        assertEquals(Connection.TRANSACTION_READ_COMMITTED, stub.isolation);
+    }
+
+    @Test
+    void exportFailureRollsBackOwnTransactionOnly() {
+        StubJdbc.StubConnection stub = catalog();
+        stub.tables.remove("offer_params");
+
+        assertThrows(RuntimeException.class, () -> export(stub));
+        assertEquals(1, stub.rollbacks);
+        assertTrue(stub.autoCommit);
+
+        stub.autoCommit = false;
+        assertThrows(RuntimeException.class, () -> export(stub));
+        assertEquals(1, stub.rollbacks);
+        assertEquals(0, stub.commits);
+    }
+
+    @Test
+    void exportToGzipFile(@TempDir Path dir) throws Exception {
+        assumeTrue(isPosix(dir));
+        Path target = dir.resolve("export.xml.gz");
+        Set<PosixFilePermission> umaskPermissions = newFilePermissions(dir);
+
+        new XmlProcessor(catalog().connection()).exportXml(target.toString());
+
+        // новый файл получает права по umask, а не rw------- временного файла
+        assertEquals(umaskPermissions, Files.getPosixFilePermissions(target));
+
+        try (InputStream in = new GZIPInputStream(Files.newInputStream(target))) {
+            assertEquals(3, elements(parse(in).getDocumentElement(), "offer").size());
+        }
+        try (var files = Files.list(dir)) {
+            assertEquals(1, files.count());
+        }
+    }
+
+    @Test
+    void exportKeepsPermissionsOfReplacedFile(@TempDir Path dir) throws Exception {
+        assumeTrue(isPosix(dir));
+        Path target = dir.resolve("export.xml");
+        Files.writeString(target, "previous");
+        Set<PosixFilePermission> permissions = PosixFilePermissions.fromString("rw-r-----");
+        Files.setPosixFilePermissions(target, permissions);
+
+        new XmlProcessor(catalog().connection()).exportXml(target.toString());
+
+        try (InputStream in = Files.newInputStream(target)) {
+            assertEquals(3, elements(parse(in).getDocumentElement(), "offer").size());
+        }
+        assertEquals(permissions, Files.getPosixFilePermissions(target));
+    }
+
+    @Test
+    void exportFailureKeepsPreviousFile(@TempDir Path dir) throws Exception {
+        assumeTrue(isPosix(dir));
+        Path target = dir.resolve("export.xml");
+        Files.writeString(target, "previous");
+        Set<PosixFilePermission> permissions = PosixFilePermissions.fromString("rw-r--r--");
+        Files.setPosixFilePermissions(target, permissions);
+        StubJdbc.StubConnection stub = catalog();
+        stub.tables.remove("offer_params");
+
+        assertThrows(RuntimeException.class, () -> new XmlProcessor(stub.connection()).exportXml(target.toString()));
+
+        assertEquals("previous", Files.readString(target));
+        assertEquals(permissions, Files.getPosixFilePermissions(target));
+        try (var files = Files.list(dir)) {
+            assertEquals(1, files.count());
+        }
+    }
+
+    private boolean isPosix(Path dir) throws Exception {
+        return Files.getFileStore(dir).supportsFileAttributeView(PosixFileAttributeView.class);
+    }
+
+    // Права, которые получает обычный новый файл в каталоге при текущем umask
+    private Set<PosixFilePermission> newFilePermissions(Path dir) throws Exception {
+        Path probe = dir.resolve("probe");
+        Files.newOutputStream(probe).close();
+        Set<PosixFilePermission> permissions = Files.getPosixFilePermissions(probe);
+        Files.delete(probe);
+        return permissions;
+    }
+}